@@ -0,0 +1,201 @@
+package com.github.baev;
+
+import javassist.bytecode.ClassFile;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking classpath scanner. Each root is scanned by the given executor, the
+ * scan can be cancelled and each root can be limited with timeout.
+ * <p>
+ * Cancellation and timeouts are cooperative: the scan is checked before each class
+ * is read. A read that is already blocked (e.g. on a slow mount) can't be stopped,
+ * so the root future completes without waiting for it and the read is abandoned,
+ * keeping its executor thread busy until the read returns.
+ */
+public class AsyncClasspathScanner {
+
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    /**
+     * Completes the timed out roots, so the listener and the stages attached to the result
+     * never run on the timer thread. It's not the scan executor, since all its threads may
+     * be busy with abandoned reads.
+     */
+    private static final ExecutorService NOTIFIER = Executors.newCachedThreadPool(
+            daemonThreadFactory("classpath-scanner-notifier")
+    );
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            daemonThreadFactory("classpath-scanner")
+    );
+
+    private final Executor executor;
+
+    private ScanListener listener = new ScanListener() {
+    };
+
+    private long rootTimeoutNanos;
+
+    /**
+     * Creates the scanner which uses the dedicated pool of daemon threads, so abandoned
+     * reads never block threads of the common pool. The pool is bounded by the number of
+     * available processors, the rest of the roots wait in the queue. A thread with an
+     * abandoned read stays busy, but the root timeout still fails the scan.
+     */
+    public AsyncClasspathScanner() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    public AsyncClasspathScanner(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set the listener to receive per-root scan progress.
+     */
+    public AsyncClasspathScanner withListener(ScanListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Set the timeout for each root scan. Non-positive timeout means no timeout.
+     */
+    public AsyncClasspathScanner withRootTimeout(long timeout, TimeUnit unit) {
+        this.rootTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Scan given uris asynchronously.
+     */
+    public CompletableFuture<Set<ClassFile>> scan(URI... uris) {
+        return scan(Arrays.asList(uris));
+    }
+
+    /**
+     * Scan given uris asynchronously. The returned future is completed with all found
+     * classes, or exceptionally as soon as any root fails or times out. Cancelling the
+     * returned future stops all root scans before they read the next class.
+     */
+    public CompletableFuture<Set<ClassFile>> scan(List<URI> uris) {
+        Set<URI> scannedUris = ConcurrentHashMap.newKeySet();
+        Set<ClassFile> classes = ConcurrentHashMap.newKeySet();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        CompletableFuture<?>[] roots = uris.stream()
+                .map(uri -> scanRoot(uri, scannedUris, classes, cancelled))
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture<Set<ClassFile>> result = new CompletableFuture<>();
+        result.whenComplete((value, e) -> cancelled.set(true));
+        Arrays.stream(roots).forEach(root -> root.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+            }
+        }));
+        CompletableFuture.allOf(roots).thenRun(() -> result.complete(classes));
+        return result;
+    }
+
+    /**
+     * Scan the given root. The scan stops as soon as the whole scan is cancelled
+     * or the root timeout is exceeded. The timeout is counted from the moment the
+     * root scan is started by the executor, not from the moment it is submitted.
+     */
+    private CompletableFuture<Void> scanRoot(URI root, Set<URI> scannedUris, Set<ClassFile> classes,
+                                             AtomicBoolean cancelled) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        AtomicBoolean skipped = new AtomicBoolean();
+        ClasspathScanner scanner = new ClasspathScanner(scannedUris, classes,
+                () -> cancelled.get() || future.isDone()) {
+            @Override
+            protected void index(ClassFile clazz) {
+                super.index(clazz);
+                listener.classIndexed(root, clazz);
+            }
+        };
+
+        CompletableFuture.runAsync(() -> {
+            startTimeout(root, future);
+            listener.rootStarted(root);
+            skipped.set(!scanner.scanOnce(root));
+        }, executor).whenComplete((value, e) -> {
+            if (e == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(unwrap(e));
+            }
+        });
+
+        return future.whenComplete((value, e) -> {
+            if (e != null) {
+                listener.rootFailed(root, unwrap(e));
+            } else if (skipped.get()) {
+                listener.rootSkipped(root);
+            } else {
+                listener.rootFinished(root);
+            }
+        });
+    }
+
+    /**
+     * Fails the given root future with {@link TimeoutException} once the root timeout
+     * is exceeded. The scanner checks the future, so the root scan stops as well.
+     */
+    private void startTimeout(URI root, CompletableFuture<Void> future) {
+        if (rootTimeoutNanos <= 0) {
+            return;
+        }
+        ScheduledFuture<?> timeout = TIMER.schedule(
+                () -> NOTIFIER.execute(() -> future.completeExceptionally(timeout(root))),
+                rootTimeoutNanos, TimeUnit.NANOSECONDS
+        );
+        future.whenComplete((value, e) -> timeout.cancel(false));
+    }
+
+    private TimeoutException timeout(URI root) {
+        return new TimeoutException("Could not scan " + root + " in "
+                + TimeUnit.NANOSECONDS.toMillis(rootTimeoutNanos) + " ms");
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                daemonThreadFactory("classpath-scanner-timer")
+        );
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
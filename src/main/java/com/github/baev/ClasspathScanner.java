@@ -4,23 +4,33 @@ import javassist.bytecode.ClassFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 /**
  * @author Dmitry Baev charlie@yandex-team.ru
@@ -31,12 +41,34 @@ public class ClasspathScanner {
     private final static Logger LOGGER = LoggerFactory.getLogger(ClasspathScanner.class);
 
     public static final String FILE_SCHEME = "file";
+    public static final String JAR_SCHEME = "jar";
+    public static final String JAR_SEPARATOR = "!/";
     public static final String CLASS_GLOB = "*.class";
     public static final String CLASS_SUFFIX = ".class";
 
-    private final Set<URI> scannedUris = new HashSet<>();
+    private final Set<URI> scannedUris;
 
-    private final Set<ClassFile> classes = new HashSet<>();
+    private final Set<ClassFile> classes;
+
+    private final BooleanSupplier cancelled;
+
+    public ClasspathScanner() {
+        this(ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet(), () -> false);
+    }
+
+    /**
+     * Creates the scanner that shares the state with other scanners. Used to scan
+     * a number of roots concurrently.
+     *
+     * @param scannedUris the set of already scanned uris.
+     * @param classes     the set to index found classes to.
+     * @param cancelled   returns true if the scan should be stopped.
+     */
+    protected ClasspathScanner(Set<URI> scannedUris, Set<ClassFile> classes, BooleanSupplier cancelled) {
+        this.scannedUris = scannedUris;
+        this.classes = classes;
+        this.cancelled = cancelled;
+    }
 
     /**
      * Finds the all classes if given uris.
@@ -59,13 +91,75 @@ public class ClasspathScanner {
     }
 
     /**
-     * Scan given uri and index all classes.
+     * Scan given uri and index all classes. Besides the file uris the method supports
+     * any uri of installed {@link java.nio.file.spi.FileSystemProvider}, such as
+     * {@code jar:file:/path/to/some.jar!/} or {@code jrt:/java.base}. The manifest
+     * classpath is scanned for jar roots given as {@code jar:} uris as well.
      *
      * @param uri the uri to scan.
      */
     public void scan(URI uri) {
-        if (uri.getScheme().equals(FILE_SCHEME) && scannedUris.add(uri)) {
+        scanOnce(uri);
+    }
+
+    /**
+     * Scan given uri and index all classes unless the uri is already scanned.
+     *
+     * @param uri the uri to scan.
+     * @return true if the uri is scanned and false if it was scanned before.
+     */
+    public boolean scanOnce(URI uri) {
+        if (!scannedUris.add(uri)) {
+            return false;
+        }
+        if (FILE_SCHEME.equals(uri.getScheme())) {
             scanFrom(Paths.get(uri));
+        } else {
+            scanFromFileSystem(uri);
+        }
+        return true;
+    }
+
+    /**
+     * Scan given uri of non-default file system. The file system will be created
+     * in case it is not exists yet and closed after the last scan using it.
+     *
+     * @param uri the uri to scan.
+     */
+    protected void scanFromFileSystem(URI uri) {
+        try {
+            Path path = SharedFileSystems.acquire(uri);
+            scanFromJarManifest(uri, path);
+            scanFrom(path);
+        } catch (IOException | IllegalArgumentException | FileSystemNotFoundException | ProviderNotFoundException e) {
+            LOGGER.debug("Could not scan the uri " + uri, e);
+        } finally {
+            SharedFileSystems.release(uri);
+        }
+    }
+
+    /**
+     * Scan the classpath from manifest of the jar given as {@code jar:} uri of the jar root,
+     * the same way as for the jar given as file uri.
+     *
+     * @param uri  the uri of the jar root.
+     * @param root the path of the jar root.
+     */
+    protected void scanFromJarManifest(URI uri, Path root) {
+        String spec = uri.getRawSchemeSpecificPart();
+        int separator = spec.indexOf(JAR_SEPARATOR);
+        if (!JAR_SCHEME.equals(uri.getScheme()) || separator < 0 || root.getParent() != null) {
+            return;
+        }
+        Path manifest = root.resolve(JarFile.MANIFEST_NAME);
+        if (Files.notExists(manifest)) {
+            return;
+        }
+        try (InputStream stream = Files.newInputStream(manifest)) {
+            Path jar = Paths.get(URI.create(spec.substring(0, separator)));
+            scanFromManifestClassPath(jar, new Manifest(stream));
+        } catch (IOException | IllegalArgumentException | FileSystemNotFoundException e) {
+            LOGGER.debug("Could not read the manifest of " + uri, e);
         }
     }
 
@@ -75,6 +169,7 @@ public class ClasspathScanner {
      * @param path the path to scan.
      */
     public void scanFrom(Path path) {
+        checkCancelled();
         if (Files.notExists(path)) {
             return;
         }
@@ -86,16 +181,26 @@ public class ClasspathScanner {
         }
     }
 
+    /**
+     * Scan given classes and index them.
+     *
+     * @param bytes the map of class names to class file bytes.
+     */
+    public void scanFrom(Map<String, byte[]> bytes) {
+        bytes.forEach(this::processClass);
+    }
+
     /**
      * Scan given directory and index all classes.
      *
      * @param path the directory to scan.
      */
     protected void scanDirectory(Path path) {
-        try {
-            Files.walk(path)
-                    .filter(this::isClassFile)
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.filter(this::isClassFile)
                     .forEach(this::processClass);
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.debug("Could not scan the directory " + path, e);
         }
@@ -108,6 +213,10 @@ public class ClasspathScanner {
      * @param path the path to the jar to scan.
      */
     protected void scanJar(Path path) {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            scanJarStream(path);
+            return;
+        }
         try (JarFile jar = new JarFile(path.toFile())) {
             scanFromManifestClassPath(path, jar.getManifest());
             List<JarEntry> entries = Collections.list(jar.entries());
@@ -119,6 +228,26 @@ public class ClasspathScanner {
         }
     }
 
+    /**
+     * Scan given jar reading it as a stream. Used for jars which are not
+     * in the default file system, so can't be opened as {@link JarFile}.
+     *
+     * @param path the path to the jar to scan.
+     */
+    protected void scanJarStream(Path path) {
+        try (JarInputStream jar = new JarInputStream(Files.newInputStream(path))) {
+            scanFromManifestClassPath(path, jar.getManifest());
+            JarEntry entry;
+            while ((entry = jar.getNextJarEntry()) != null) {
+                if (isClassFile(entry)) {
+                    processClass(jar, entry);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not scan the jar " + path, e);
+        }
+    }
+
     /**
      * Process the class by the given path.
      *
@@ -146,6 +275,39 @@ public class ClasspathScanner {
         }
     }
 
+    /**
+     * Process the current class entry of the jar stream. The stream is left open
+     * to read the next entries.
+     *
+     * @param jar   the jar stream positioned at the class entry.
+     * @param entry the entry to process.
+     */
+    protected void processClass(JarInputStream jar, JarEntry entry) {
+        try {
+            processClass(new FilterInputStream(jar) {
+                @Override
+                public void close() {
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Could not process class entry " + entry + " into jar stream", e);
+        }
+    }
+
+    /**
+     * Process the class from given bytes.
+     *
+     * @param name  the name of the class.
+     * @param bytes the class file bytes.
+     */
+    protected void processClass(String name, byte[] bytes) {
+        try {
+            processClass(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            LOGGER.debug("Could not process class " + name, e);
+        }
+    }
+
     /**
      * Process the class.
      *
@@ -153,8 +315,29 @@ public class ClasspathScanner {
      * @throws IOException if any occurs.
      */
     protected void processClass(InputStream in) throws IOException {
+        checkCancelled();
         try (DataInputStream stream = new DataInputStream(in)) {
-            classes.add(new ClassFile(stream));
+            index(new ClassFile(stream));
+        }
+    }
+
+    /**
+     * Index the given class.
+     *
+     * @param clazz the class to index.
+     */
+    protected void index(ClassFile clazz) {
+        classes.add(clazz);
+    }
+
+    /**
+     * Stops the scan if it was cancelled.
+     *
+     * @throws CancellationException if the scan was cancelled.
+     */
+    protected void checkCancelled() {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("The scan was cancelled");
         }
     }
 
@@ -193,7 +376,7 @@ public class ClasspathScanner {
      */
     protected URI toAbsoluteUri(Path jar, String classpathElement) {
         URI uri = URI.create(classpathElement);
-        return uri.isAbsolute() ? uri : jar.getParent().resolve(classpathElement).toUri();
+        return uri.isAbsolute() ? uri : jar.toAbsolutePath().getParent().resolve(classpathElement).toUri();
     }
 
     /**
@@ -210,7 +393,8 @@ public class ClasspathScanner {
      * @return true if given path is a class and false otherwise.
      */
     protected boolean isClassFile(Path path) {
-        return isClassFile(path.getFileName().toString());
+        Path fileName = path.getFileName();
+        return fileName != null && isClassFile(fileName.toString());
     }
 
     /**
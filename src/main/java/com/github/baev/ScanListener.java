@@ -0,0 +1,55 @@
+package com.github.baev;
+
+import javassist.bytecode.ClassFile;
+
+import java.net.URI;
+
+/**
+ * Receives the progress of the asynchronous scan. Callbacks are invoked from the
+ * threads that scan the roots, so implementations should be thread-safe.
+ */
+public interface ScanListener {
+
+    /**
+     * Called before the root is scanned.
+     *
+     * @param root the root to scan.
+     */
+    default void rootStarted(URI root) {
+    }
+
+    /**
+     * Called after the class is indexed as a part of the root scan.
+     *
+     * @param root  the root being scanned.
+     * @param clazz the indexed class.
+     */
+    default void classIndexed(URI root, ClassFile clazz) {
+    }
+
+    /**
+     * Called after the root is scanned successfully.
+     *
+     * @param root the scanned root.
+     */
+    default void rootFinished(URI root) {
+    }
+
+    /**
+     * Called if the root is skipped because it is already scanned, e.g. as a part
+     * of the manifest classpath of another root.
+     *
+     * @param root the skipped root.
+     */
+    default void rootSkipped(URI root) {
+    }
+
+    /**
+     * Called if the root scan is failed, timed out or cancelled.
+     *
+     * @param root  the root failed to scan.
+     * @param cause the cause of the failure.
+     */
+    default void rootFailed(URI root, Throwable cause) {
+    }
+}
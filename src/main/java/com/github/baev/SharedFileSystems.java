@@ -0,0 +1,188 @@
+package com.github.baev;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Reference counted file systems shared by the concurrent scans. The file system for
+ * given uri is created by the first scan that needs it and closed after the last scan
+ * using it is finished. File systems which are opened by someone else are never closed.
+ * <p>
+ * The lock guards the reference counters only, the file systems are created and closed
+ * outside of it, so a slow file system doesn't block the scans of other ones.
+ */
+final class SharedFileSystems {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedFileSystems.class);
+
+    private static final Map<URI, SharedFileSystem> FILE_SYSTEMS = new HashMap<>();
+
+    SharedFileSystems() {
+    }
+
+    /**
+     * Returns the path for given uri, creating the file system if needed. Each acquired
+     * uri should be released using {@link #release(URI)}, even if the method fails.
+     *
+     * @param uri the uri to get path for.
+     * @return the path for given uri.
+     * @throws IOException if the file system could not be created.
+     */
+    public static Path acquire(URI uri) throws IOException {
+        URI key = toKey(uri);
+        while (true) {
+            SharedFileSystem shared;
+            boolean created = false;
+            boolean closing;
+            synchronized (FILE_SYSTEMS) {
+                shared = FILE_SYSTEMS.get(key);
+                if (shared == null) {
+                    shared = new SharedFileSystem();
+                    FILE_SYSTEMS.put(key, shared);
+                    created = true;
+                }
+                closing = shared.closing;
+                if (!closing) {
+                    shared.references++;
+                }
+            }
+            if (closing) {
+                shared.closed.join();
+                continue;
+            }
+            if (created) {
+                shared.open(uri);
+            }
+            shared.get();
+            return Paths.get(uri);
+        }
+    }
+
+    /**
+     * Releases the uri acquired by {@link #acquire(URI)}. The file system is closed
+     * if it was created by the scanner and no other scan uses it.
+     *
+     * @param uri the uri to release.
+     */
+    public static void release(URI uri) {
+        URI key = toKey(uri);
+        SharedFileSystem shared;
+        synchronized (FILE_SYSTEMS) {
+            shared = FILE_SYSTEMS.get(key);
+            if (shared == null || --shared.references > 0) {
+                return;
+            }
+            shared.closing = true;
+        }
+        try {
+            shared.close();
+        } finally {
+            synchronized (FILE_SYSTEMS) {
+                FILE_SYSTEMS.remove(key, shared);
+            }
+            shared.closed.complete(null);
+        }
+    }
+
+    /**
+     * Returns the key of the file system for given uri. All the entries of the jar
+     * (e.g. {@code jar:file:/some.jar!/a} and {@code jar:file:/some.jar!/b}) share the
+     * file system of the jar.
+     */
+    private static URI toKey(URI uri) {
+        String spec = uri.getRawSchemeSpecificPart();
+        int separator = spec.indexOf(ClasspathScanner.JAR_SEPARATOR);
+        return separator < 0 ? uri : URI.create(uri.getScheme() + ":" + spec.substring(0, separator));
+    }
+
+    /**
+     * The file system shared by the scans. The counter and the closing flag are
+     * guarded by {@link #FILE_SYSTEMS}.
+     */
+    private static final class SharedFileSystem {
+
+        private final CompletableFuture<FileSystem> opened = new CompletableFuture<>();
+
+        private final CompletableFuture<Void> closed = new CompletableFuture<>();
+
+        private volatile boolean owned;
+
+        private boolean closing;
+
+        private int references;
+
+        /**
+         * Opens the file system for given uri. Waiting scans are notified in any case.
+         */
+        private void open(URI uri) {
+            try {
+                opened.complete(openFileSystem(uri));
+            } catch (IOException | RuntimeException e) {
+                opened.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Returns the existing file system for given uri, or creates the new one.
+         */
+        private FileSystem openFileSystem(URI uri) throws IOException {
+            try {
+                return Paths.get(uri).getFileSystem();
+            } catch (FileSystemNotFoundException ignored) {
+            }
+            try {
+                FileSystem fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                owned = true;
+                return fileSystem;
+            } catch (FileSystemAlreadyExistsException e) {
+                return Paths.get(uri).getFileSystem();
+            }
+        }
+
+        /**
+         * Waits for the file system to be opened.
+         */
+        private FileSystem get() throws IOException {
+            try {
+                return opened.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Closes the file system if it was created by the scanner.
+         */
+        private void close() {
+            if (!owned || !opened.isDone() || opened.isCompletedExceptionally()) {
+                return;
+            }
+            FileSystem fileSystem = opened.join();
+            try {
+                fileSystem.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close the file system " + fileSystem, e);
+            }
+        }
+    }
+}
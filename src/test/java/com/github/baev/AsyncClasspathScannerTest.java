@@ -0,0 +1,415 @@
+package com.github.baev;
+
+import javassist.bytecode.ClassFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+
+import static com.github.baev.ClasspathScannerTest.FIRST_TEST;
+import static com.github.baev.ClasspathScannerTest.MANIFESTDEPJAR;
+import static com.github.baev.ClasspathScannerTest.SECOND_TEST;
+import static com.github.baev.ClasspathScannerTest.TESTJAR1;
+import static com.github.baev.ClasspathScannerTest.TESTJAR2;
+import static com.github.baev.ClasspathScannerTest.getResource;
+import static com.github.baev.ClasspathScannerTest.getResourceAsFile;
+import static com.github.baev.ClasspathScannerTest.readAll;
+import static com.github.baev.ClasspathScannerTest.safeToUri;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class AsyncClasspathScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldFindAllClasses() throws Exception {
+        Set<ClassFile> classes = new AsyncClasspathScanner()
+                .scan(getUri(TESTJAR1), getUri(TESTJAR2))
+                .get(10, TimeUnit.SECONDS);
+        assertThat(classes, hasSize(2));
+        List<String> strings = classes.stream().map(ClassFile::getName).collect(Collectors.toList());
+
+        assertThat(strings, hasItems(FIRST_TEST, SECOND_TEST));
+    }
+
+    @Test
+    public void shouldReadJarManifestClasspath() throws Exception {
+        Set<ClassFile> classes = new AsyncClasspathScanner()
+                .scan(getUri(MANIFESTDEPJAR), getUri(TESTJAR1))
+                .get(10, TimeUnit.SECONDS);
+        assertThat(classes, hasSize(2));
+    }
+
+    @Test
+    public void shouldNotifyListener() throws Exception {
+        List<URI> started = new CopyOnWriteArrayList<>();
+        List<URI> finished = new CopyOnWriteArrayList<>();
+        List<String> indexed = new CopyOnWriteArrayList<>();
+        URI uri = getUri(TESTJAR1);
+
+        new AsyncClasspathScanner()
+                .withListener(new ScanListener() {
+                    @Override
+                    public void rootStarted(URI root) {
+                        started.add(root);
+                    }
+
+                    @Override
+                    public void classIndexed(URI root, ClassFile clazz) {
+                        indexed.add(clazz.getName());
+                    }
+
+                    @Override
+                    public void rootFinished(URI root) {
+                        finished.add(root);
+                    }
+                })
+                .scan(uri)
+                .get(10, TimeUnit.SECONDS);
+
+        assertThat(started, hasItems(uri));
+        assertThat(indexed, hasItems(FIRST_TEST));
+        assertThat(finished, hasItems(uri));
+    }
+
+    @Test
+    public void shouldNotifySkippedRoot() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<URI> finished = new CopyOnWriteArrayList<>();
+        List<URI> skipped = new CopyOnWriteArrayList<>();
+        URI manifestDep = getUri(MANIFESTDEPJAR);
+        URI testJar = getUri(TESTJAR1);
+        try {
+            new AsyncClasspathScanner(executor)
+                    .withListener(new ScanListener() {
+                        @Override
+                        public void rootFinished(URI root) {
+                            finished.add(root);
+                        }
+
+                        @Override
+                        public void rootSkipped(URI root) {
+                            skipped.add(root);
+                        }
+                    })
+                    .scan(manifestDep, testJar)
+                    .get(10, TimeUnit.SECONDS);
+
+            assertThat(finished, hasSize(1));
+            assertThat(finished, hasItems(manifestDep));
+            assertThat(skipped, hasSize(1));
+            assertThat(skipped, hasItems(testJar));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldStopScanIfCancelled() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch cancelled = new CountDownLatch(1);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<ClassFile> indexed = new CopyOnWriteArrayList<>();
+        try {
+            CompletableFuture<Set<ClassFile>> future = new AsyncClasspathScanner(executor)
+                    .withListener(new ScanListener() {
+                        @Override
+                        public void rootStarted(URI root) {
+                            await(cancelled);
+                        }
+
+                        @Override
+                        public void classIndexed(URI root, ClassFile clazz) {
+                            indexed.add(clazz);
+                        }
+
+                        @Override
+                        public void rootFailed(URI root, Throwable cause) {
+                            failures.add(cause);
+                        }
+                    })
+                    .scan(getUri(TESTJAR1), getUri(TESTJAR2));
+
+            future.cancel(true);
+            cancelled.countDown();
+            executor.submit(() -> sleep(0)).get(10, TimeUnit.SECONDS);
+
+            assertThat(failures, hasSize(2));
+            assertThat(failures.get(0), instanceOf(CancellationException.class));
+            assertThat(failures.get(1), instanceOf(CancellationException.class));
+            assertThat(indexed, empty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldStopJarReadIfCancelled() throws Exception {
+        byte[] bytes = readFirstTest();
+        File jar = folder.newFile("many-classes.jar");
+        try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < 10; i++) {
+                stream.putNextEntry(new JarEntry("com/github/baev/FirstTest" + i + ".class"));
+                stream.write(bytes);
+                stream.closeEntry();
+            }
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch submitted = new CountDownLatch(1);
+        AtomicReference<CompletableFuture<Set<ClassFile>>> future = new AtomicReference<>();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<ClassFile> indexed = new CopyOnWriteArrayList<>();
+        try {
+            future.set(new AsyncClasspathScanner(executor)
+                    .withListener(new ScanListener() {
+                        @Override
+                        public void rootStarted(URI root) {
+                            await(submitted);
+                        }
+
+                        @Override
+                        public void classIndexed(URI root, ClassFile clazz) {
+                            indexed.add(clazz);
+                            future.get().cancel(true);
+                        }
+
+                        @Override
+                        public void rootFailed(URI root, Throwable cause) {
+                            failures.add(cause);
+                        }
+                    })
+                    .scan(jar.toURI()));
+            submitted.countDown();
+            executor.submit(() -> sleep(0)).get(10, TimeUnit.SECONDS);
+
+            assertThat(future.get().isCancelled(), is(true));
+            assertThat(indexed, hasSize(1));
+            assertThat(failures, hasSize(1));
+            assertThat(failures.get(0), instanceOf(CancellationException.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldFailIfRootTimedOut() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<ClassFile> indexed = new CopyOnWriteArrayList<>();
+        try {
+            CompletableFuture<Set<ClassFile>> future = new AsyncClasspathScanner(executor)
+                    .withRootTimeout(100, TimeUnit.MILLISECONDS)
+                    .withListener(new ScanListener() {
+                        @Override
+                        public void rootStarted(URI root) {
+                            sleep(500);
+                        }
+
+                        @Override
+                        public void classIndexed(URI root, ClassFile clazz) {
+                            indexed.add(clazz);
+                        }
+
+                        @Override
+                        public void rootFailed(URI root, Throwable cause) {
+                            failures.add(cause);
+                        }
+                    })
+                    .scan(getUri(TESTJAR1));
+
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("The scan should be timed out");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(TimeoutException.class));
+            }
+            executor.submit(() -> sleep(0)).get(10, TimeUnit.SECONDS);
+
+            assertThat(failures, hasSize(1));
+            assertThat(failures.get(0), instanceOf(TimeoutException.class));
+            assertThat(indexed, empty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotRunListenerOnTimerThread() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch failed = new CountDownLatch(2);
+        try {
+            ScanListener listener = new ScanListener() {
+                @Override
+                public void rootStarted(URI root) {
+                    await(release);
+                }
+
+                @Override
+                public void rootFailed(URI root, Throwable cause) {
+                    failed.countDown();
+                    await(release);
+                }
+            };
+            AsyncClasspathScanner scanner = new AsyncClasspathScanner(executor)
+                    .withRootTimeout(100, TimeUnit.MILLISECONDS)
+                    .withListener(listener);
+            scanner.scan(getUri(TESTJAR1));
+            scanner.scan(getUri(TESTJAR2));
+
+            assertThat(failed.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotCountQueueTimeInRootTimeout() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> sleep(4000));
+            Set<ClassFile> classes = new AsyncClasspathScanner(executor)
+                    .withRootTimeout(3, TimeUnit.SECONDS)
+                    .scan(getUri(TESTJAR1), getUri(TESTJAR2))
+                    .get(10, TimeUnit.SECONDS);
+            assertThat(classes, hasSize(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldShareFileSystemBetweenRoots() throws Exception {
+        byte[] bytes = readFirstTest();
+        Path zip = folder.getRoot().toPath().resolve("shared.zip");
+        URI zipUri = URI.create("jar:" + zip.toUri());
+        List<URI> roots = new ArrayList<>();
+        try (FileSystem fileSystem = FileSystems.newFileSystem(zipUri, Collections.singletonMap("create", "true"))) {
+            for (int i = 0; i < 16; i++) {
+                Path dir = Files.createDirectory(fileSystem.getPath("/root" + i));
+                for (int j = 0; j < 32; j++) {
+                    Files.write(dir.resolve("FirstTest" + j + ".class"), bytes);
+                }
+                roots.add(URI.create(zipUri + "!/root" + i));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Set<ClassFile> classes = new AsyncClasspathScanner(executor)
+                    .scan(roots)
+                    .get(10, TimeUnit.SECONDS);
+            assertThat(classes, hasSize(16 * 32));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotBlockOtherFileSystemsWhileCreatingOne() throws Exception {
+        BlockingFileSystemProvider.started = new CountDownLatch(1);
+        BlockingFileSystemProvider.released = new CountDownLatch(1);
+        URI blocking = URI.create(BlockingFileSystemProvider.SCHEME + ":/slow");
+        URI jar = URI.create("jar:" + getUri(TESTJAR2) + "!/");
+        CountDownLatch finished = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Set<ClassFile>> future = new AsyncClasspathScanner(executor)
+                    .withListener(new ScanListener() {
+                        @Override
+                        public void rootStarted(URI root) {
+                            if (jar.equals(root)) {
+                                await(BlockingFileSystemProvider.started);
+                            }
+                        }
+
+                        @Override
+                        public void rootFinished(URI root) {
+                            if (jar.equals(root)) {
+                                finished.countDown();
+                            }
+                        }
+                    })
+                    .scan(blocking, jar);
+
+            assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(future.isDone(), is(false));
+
+            BlockingFileSystemProvider.released.countDown();
+            assertThat(future.get(10, TimeUnit.SECONDS), hasSize(1));
+        } finally {
+            BlockingFileSystemProvider.released.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotFailIfNoRoots() throws Exception {
+        Set<ClassFile> classes = new AsyncClasspathScanner().scan().get(10, TimeUnit.SECONDS);
+        assertThat(classes, empty());
+    }
+
+    private static byte[] readFirstTest() throws Exception {
+        try (JarFile jar = new JarFile(getResourceAsFile(TESTJAR1))) {
+            try (InputStream stream = jar.getInputStream(jar.getJarEntry("com/github/baev/FirstTest.class"))) {
+                return readAll(stream);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static URI getUri(String resourceName) {
+        return safeToUri(getResource(resourceName));
+    }
+}
@@ -6,13 +6,26 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.zeroturnaround.zip.ZipUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.spi.FileSystemProvider;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.hasItems;
@@ -20,6 +33,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * @author Dmitry Baev charlie@yandex-team.ru
@@ -97,6 +111,91 @@ public class ClasspathScannerTest {
         getClassFiles(WITHOUTMANIFEST);
     }
 
+    @Test
+    public void shouldFindAllClassesByJarUri() throws Exception {
+        URI uri = URI.create("jar:" + getResource(TESTJAR2).toURI() + "!/");
+
+        Set<ClassFile> classes = getClassFiles(uri);
+        assertThat(classes, hasSize(1));
+        assertThat(classes.iterator().next().getName(), is(SECOND_TEST));
+    }
+
+    @Test
+    public void shouldReadJarManifestClasspathByJarUri() throws Exception {
+        URI uri = URI.create("jar:" + getResource(MANIFESTDEPJAR).toURI() + "!/");
+
+        Set<ClassFile> classes = getClassFiles(uri);
+        assertThat(classes, hasSize(2));
+        List<String> strings = classes.stream().map(ClassFile::getName).collect(Collectors.toList());
+
+        assertThat(strings, hasItems(FIRST_TEST, SECOND_TEST));
+    }
+
+    @Test
+    public void shouldFindAllClassesInJarFromZipFileSystem() throws Exception {
+        Path zip = folder.getRoot().toPath().resolve("outer.zip");
+        URI uri = URI.create("jar:" + zip.toUri());
+        try (FileSystem fileSystem = FileSystems.newFileSystem(uri, Collections.singletonMap("create", "true"))) {
+            Files.copy(getResourceAsFile(MANIFESTDEPJAR).toPath(), fileSystem.getPath(MANIFESTDEPJAR));
+            Files.copy(getResourceAsFile(TESTJAR1).toPath(), fileSystem.getPath(TESTJAR1));
+            Files.copy(getResourceAsFile(TESTJAR2).toPath(), fileSystem.getPath(TESTJAR2));
+
+            ClasspathScanner scanner = new ClasspathScanner();
+            scanner.scanFrom(fileSystem.getPath(MANIFESTDEPJAR));
+            List<String> strings = scanner.getClasses().stream()
+                    .map(ClassFile::getName)
+                    .collect(Collectors.toList());
+
+            assertThat(strings, hasSize(2));
+            assertThat(strings, hasItems(FIRST_TEST, SECOND_TEST));
+        }
+    }
+
+    @Test
+    public void shouldFindAllClassesInJrtModule() throws Exception {
+        URI uri = URI.create("jrt:/java.logging");
+        assumeTrue(FileSystemProvider.installedProviders().stream()
+                .anyMatch(provider -> "jrt".equals(provider.getScheme())));
+
+        List<String> strings = getClassFiles(uri).stream()
+                .map(ClassFile::getName)
+                .collect(Collectors.toList());
+        assertThat(strings, hasItems("java.util.logging.Logger"));
+    }
+
+    @Test
+    public void shouldFindAllClassesInMemory() throws Exception {
+        Map<String, byte[]> bytes = new HashMap<>();
+        try (JarFile jar = new JarFile(getResourceAsFile(TESTJAR1))) {
+            JarEntry entry = jar.getJarEntry("com/github/baev/FirstTest.class");
+            try (InputStream stream = jar.getInputStream(entry)) {
+                bytes.put(FIRST_TEST, readAll(stream));
+            }
+        }
+
+        ClasspathScanner scanner = new ClasspathScanner();
+        scanner.scanFrom(bytes);
+        Set<ClassFile> classes = scanner.getClasses();
+        assertThat(classes, hasSize(1));
+        assertThat(classes.iterator().next().getName(), is(FIRST_TEST));
+    }
+
+    @Test
+    public void shouldNotFailIfUnknownScheme() throws Exception {
+        Set<ClassFile> classes = getClassFiles(URI.create("unknown:/some/path"));
+        assertThat(classes, hasSize(0));
+    }
+
+    public static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
     public static Set<ClassFile> getClassFiles(URI... uris) throws URISyntaxException {
         return ClasspathScanner.getAllClasses(uris);
     }